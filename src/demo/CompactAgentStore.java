@@ -0,0 +1,313 @@
+// CompactAgentStore
+package demo;
+
+/**
+ * Compact, column-oriented storage for large rabbit populations.
+ *
+ * Every rabbit is packed into two longs held in primitive arrays,
+ * 16 bytes in all, instead of a RabbitsGrassSimulationAgent object
+ * and the references pointing at it:
+ * <pre>
+ *   place: x (26 bits) | y (26 bits) | direction (3 bits) | reproduce (8 bits)
+ *   state: energy (32 bits) | ID (32 bits, 0 until first asked for)
+ * </pre>
+ * Rabbits are addressed by slot. Removing a rabbit moves the last
+ * rabbit into its slot, so slots are only stable between removals.
+ * Objects for probes and displays are made on demand with materialize.
+ * The grass seeking radius is the same for the whole population, so
+ * it is held once by the store rather than per rabbit.
+ */
+public class CompactAgentStore {
+  private static final int COORD_BITS = 26;
+  private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+  private static final int Y_SHIFT = 11;
+  private static final int X_SHIFT = Y_SHIFT + COORD_BITS;
+  private static final int DIRECTION_SHIFT = 8;
+  private static final long DIRECTION_MASK = 0x7L;
+  private static final long REPRODUCE_MASK = 0xFFL;
+  private static final long LOW_MASK = 0xFFFFFFFFL;
+
+  /**
+   * The largest world dimension the packed coordinates can hold
+   */
+  public static final int MAX_COORD = (int)COORD_MASK;
+
+  private long[] place;
+  private long[] state;
+  private int size;
+  private int grassSeekRadius = 0;
+
+  /**
+   * Constructor that takes the number of rabbits to make room for
+   * @param capacity the initial capacity; the store grows as needed
+   */
+  public CompactAgentStore(int capacity){
+    place = new long[Math.max(capacity, 16)];
+    state = new long[place.length];
+    size = 0;
+  }
+
+  /**
+   * Get the number of rabbits in the store
+   * @return the number of rabbits
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * Set how far the rabbits in this store look for grass when
+   * choosing a direction; materialized agents are given this radius
+   * @param radius the grass seeking radius; 0 means moving randomly
+   */
+  public void setGrassSeekRadius(int radius){
+    grassSeekRadius = radius;
+  }
+
+  /**
+   * Get how far the rabbits in this store look for grass
+   * @return the grass seeking radius; 0 means moving randomly
+   */
+  public int getGrassSeekRadius(){
+    return grassSeekRadius;
+  }
+
+  /**
+   * Add a rabbit to the store. Its ID is assigned the first
+   * time it is asked for.
+   * @param x the rabbit's X position
+   * @param y the rabbit's Y position
+   * @param vX the rabbit's velocity in the X direction
+   * @param vY the rabbit's velocity in the Y direction
+   * @param energy the rabbit's energy
+   * @return the slot the rabbit was stored in
+   * @throws IllegalArgumentException if the position is out of range
+   * or the velocity is not one of the 8 directions
+   */
+  public int add(int x, int y, int vX, int vY, int energy){
+    return add(x, y, vX, vY, energy, 0, 0);
+  }
+
+  /**
+   * Pack an existing agent object into the store, keeping its ID.
+   * The agent's grass seeking radius is not kept per rabbit; the
+   * store's own radius applies once it is stored.
+   * @param agent the agent to copy
+   * @return the slot the rabbit was stored in
+   */
+  public int add(RabbitsGrassSimulationAgent agent){
+    return add(agent.getX(), agent.getY(), agent.getVX(), agent.getVY(),
+               agent.getEnergy(), agent.getReproduceNumber(), agent.getIDNumber());
+  }
+
+  private int add(int x, int y, int vX, int vY, int energy, int reproduceNumber, int id){
+    if(size == place.length){
+      int capacity = place.length + (place.length >> 1);
+      long[] newPlace = new long[capacity];
+      long[] newState = new long[capacity];
+      System.arraycopy(place, 0, newPlace, 0, size);
+      System.arraycopy(state, 0, newState, 0, size);
+      place = newPlace;
+      state = newState;
+    }
+    int slot = size++;
+    place[slot] = packPlace(x, y, RabbitsGrassSimulationSpace.getDirection(vX, vY), reproduceNumber);
+    state[slot] = packState(energy, id);
+    return slot;
+  }
+
+  /**
+   * Remove the rabbit in a slot. The last rabbit in the store
+   * is moved into the freed slot.
+   * @param slot the slot to empty
+   */
+  public void remove(int slot){
+    size--;
+    place[slot] = place[size];
+    state[slot] = state[size];
+  }
+
+  /**
+   * Exchange the rabbits in two slots, for reordering the store
+   * in place
+   * @param i the first slot
+   * @param j the second slot
+   */
+  public void swap(int i, int j){
+    long p = place[i];
+    place[i] = place[j];
+    place[j] = p;
+    long q = state[i];
+    state[i] = state[j];
+    state[j] = q;
+  }
+
+  /**
+   * Find the slot of the rabbit at a cell. This scans the store,
+   * so it is meant for occasional lookups such as probes.
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return the slot of the rabbit at X,Y, or -1 if there is none
+   */
+  public int findSlot(int x, int y){
+    long mask = (COORD_MASK << X_SHIFT) | (COORD_MASK << Y_SHIFT);
+    long wanted = ((long)x << X_SHIFT) | ((long)y << Y_SHIFT);
+    for(int slot = 0; slot < size; slot++){
+      if((place[slot] & mask) == wanted) return slot;
+    }
+    return -1;
+  }
+
+  private static long packPlace(int x, int y, int direction, int reproduceNumber){
+    if(x < 0 || x > MAX_COORD || y < 0 || y > MAX_COORD){
+      throw new IllegalArgumentException("Position out of range: " + x + ", " + y);
+    }
+    if(direction < 0 || direction > DIRECTION_MASK){
+      throw new IllegalArgumentException("Invalid direction: " + direction);
+    }
+    return ((long)x << X_SHIFT) | ((long)y << Y_SHIFT)
+         | ((long)direction << DIRECTION_SHIFT) | (reproduceNumber & REPRODUCE_MASK);
+  }
+
+  private static long packState(int energy, int id){
+    return ((long)energy << 32) | (id & LOW_MASK);
+  }
+
+  /**
+   * Get the X position of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @return the rabbit's X position
+   */
+  public int getX(int slot){
+    return (int)((place[slot] >>> X_SHIFT) & COORD_MASK);
+  }
+
+  /**
+   * Get the Y position of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @return the rabbit's Y position
+   */
+  public int getY(int slot){
+    return (int)((place[slot] >>> Y_SHIFT) & COORD_MASK);
+  }
+
+  /**
+   * Set the position of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @param x the new X position
+   * @param y the new Y position
+   */
+  public void setXY(int slot, int x, int y){
+    place[slot] = packPlace(x, y, getDirection(slot), getReproduceNumber(slot));
+  }
+
+  /**
+   * Get the direction the rabbit in a slot is heading in
+   * @param slot the rabbit's slot
+   * @return a direction index 0-7, as used by RabbitsGrassSimulationSpace
+   */
+  public int getDirection(int slot){
+    return (int)((place[slot] >>> DIRECTION_SHIFT) & DIRECTION_MASK);
+  }
+
+  /**
+   * Set the direction the rabbit in a slot is heading in
+   * @param slot the rabbit's slot
+   * @param direction a direction index 0-7
+   */
+  public void setDirection(int slot, int direction){
+    if(direction < 0 || direction > DIRECTION_MASK){
+      throw new IllegalArgumentException("Invalid direction: " + direction);
+    }
+    place[slot] = (place[slot] & ~(DIRECTION_MASK << DIRECTION_SHIFT))
+                | ((direction & DIRECTION_MASK) << DIRECTION_SHIFT);
+  }
+
+  /**
+   * Get the reproduce state of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @return the reproduce state, 0-255
+   */
+  public int getReproduceNumber(int slot){
+    return (int)(place[slot] & REPRODUCE_MASK);
+  }
+
+  /**
+   * Set the reproduce state of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @param reproduceNumber the new reproduce state, 0-255
+   */
+  public void setReproduceNumber(int slot, int reproduceNumber){
+    place[slot] = (place[slot] & ~REPRODUCE_MASK) | (reproduceNumber & REPRODUCE_MASK);
+  }
+
+  /**
+   * Get the energy of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @return the rabbit's energy
+   */
+  public int getEnergy(int slot){
+    return (int)(state[slot] >> 32);
+  }
+
+  /**
+   * Set the energy of the rabbit in a slot
+   * @param slot the rabbit's slot
+   * @param energy the rabbit's new energy
+   */
+  public void setEnergy(int slot, int energy){
+    state[slot] = packState(energy, (int)state[slot]);
+  }
+
+  /**
+   * Get the ID of the rabbit in a slot, assigning one
+   * if it does not have one yet
+   * @param slot the rabbit's slot
+   * @return a String in the form "A-101"
+   */
+  public String getID(int slot){
+    return "A-" + getIDNumber(slot);
+  }
+
+  private int getIDNumber(int slot){
+    int id = (int)state[slot];
+    if(id == 0){
+      id = RabbitsGrassSimulationAgent.nextID();
+      state[slot] = packState(getEnergy(slot), id);
+    }
+    return id;
+  }
+
+  /**
+   * Make an agent object holding a copy of the rabbit in a slot,
+   * for probes and displays. The agent is given the store's grass
+   * seeking radius. Changes to the object are not seen by the store
+   * until written back with store.
+   * @param slot the rabbit's slot
+   * @param space the space the agent should refer to
+   * @return a new agent object
+   */
+  public RabbitsGrassSimulationAgent materialize(int slot, RabbitsGrassSimulationSpace space){
+    int direction = getDirection(slot);
+    RabbitsGrassSimulationAgent agent = new RabbitsGrassSimulationAgent(
+        getX(slot), getY(slot),
+        RabbitsGrassSimulationSpace.getDirectionX(direction),
+        RabbitsGrassSimulationSpace.getDirectionY(direction),
+        getEnergy(slot), getReproduceNumber(slot), getIDNumber(slot));
+    agent.setRabbitsGrassSimulationSpace(space);
+    agent.setGrassSeekRadius(grassSeekRadius);
+    return agent;
+  }
+
+  /**
+   * Write the state of a materialized agent back into a slot
+   * @param slot the rabbit's slot
+   * @param agent the agent holding the new state
+   */
+  public void store(int slot, RabbitsGrassSimulationAgent agent){
+    place[slot] = packPlace(agent.getX(), agent.getY(),
+                            RabbitsGrassSimulationSpace.getDirection(agent.getVX(), agent.getVY()),
+                            agent.getReproduceNumber());
+    state[slot] = packState(agent.getEnergy(), agent.getIDNumber());
+  }
+}
@@ -0,0 +1,160 @@
+// GrassIndex
+package demo;
+
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Summed-area index over the grass held in a RabbitsGrassSimulationSpace.
+ *
+ * Stores the grass counts in a two-dimensional Fenwick (binary indexed)
+ * tree, so that the amount of grass in any axis-aligned rectangle can
+ * be read, and a single cell can be changed, in O(log X * log Y) time.
+ * The space keeps this index current from spreadGrass and takeGrassAt;
+ * nothing else should write to it.
+ */
+public class GrassIndex {
+  private int xSize;
+  private int ySize;
+  private long[] tree;
+  private long total;
+
+  /**
+   * Constructor that takes as arguments the x,y dimensions
+   * of the space being indexed. All cells start with no grass.
+   * @param xSize size of X dimension
+   * @param ySize size of Y dimension
+   */
+  public GrassIndex(int xSize, int ySize){
+    this.xSize = xSize;
+    this.ySize = ySize;
+    tree = new long[(xSize + 1) * (ySize + 1)];
+    total = 0;
+  }
+
+  /**
+   * Record a change in the amount of grass at a cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @param delta the amount of grass added (negative if removed)
+   */
+  public void add(int x, int y, int delta){
+    if(delta == 0) return;
+    total += delta;
+    for(int i = x + 1; i <= xSize; i += i & -i){
+      int row = i * (ySize + 1);
+      for(int j = y + 1; j <= ySize; j += j & -j){
+        tree[row + j] += delta;
+      }
+    }
+  }
+
+  /**
+   * Rebuild the whole index from the grass at every cell, after
+   * a large change. Builds the tree in place in O(X * Y), which is
+   * far cheaper than one add per cell, with the work split across
+   * threads.
+   * @param grassAt gives the amount of grass at cell X,Y
+   */
+  public void rebuild(final IntBinaryOperator grassAt){
+    final int stride = ySize + 1;
+
+    // Load the cells and push each node into its parent along Y;
+    // every row of the tree is independent
+    IntStream.rangeClosed(1, xSize).parallel().forEach(i -> {
+      int row = i * stride;
+      tree[row] = 0;
+      for(int j = 1; j <= ySize; j++){
+        tree[row + j] = grassAt.applyAsInt(i - 1, j - 1);
+      }
+      for(int j = 1; j <= ySize; j++){
+        int parent = j + (j & -j);
+        if(parent <= ySize) tree[row + parent] += tree[row + j];
+      }
+    });
+
+    // Then push each row into its parent along X. A row is complete
+    // once all lower rows are pushed, so rows go in order, with
+    // the work split into bands of columns
+    final int band = 512;
+    IntStream.range(0, (ySize + band) / band).parallel().forEach(b -> {
+      int from = Math.max(b * band, 1);
+      int to = Math.min((b + 1) * band, stride);
+      for(int i = 1; i <= xSize; i++){
+        int parent = i + (i & -i);
+        if(parent > xSize) continue;
+        for(int j = from; j < to; j++){
+          tree[parent * stride + j] += tree[i * stride + j];
+        }
+      }
+    });
+
+    total = prefix(xSize, ySize);
+  }
+
+  /**
+   * Sum of the grass in the rectangle [0, x) by [0, y)
+   */
+  private long prefix(int x, int y){
+    long sum = 0;
+    for(int i = x; i > 0; i -= i & -i){
+      int row = i * (ySize + 1);
+      for(int j = y; j > 0; j -= j & -j){
+        sum += tree[row + j];
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Get the amount of grass in a rectangle that lies entirely
+   * inside the space (no wrapping).
+   * @param x0 lowest X coordinate of the rectangle
+   * @param y0 lowest Y coordinate of the rectangle
+   * @param x1 highest X coordinate of the rectangle (inclusive)
+   * @param y1 highest Y coordinate of the rectangle (inclusive)
+   * @return the total grass in the rectangle
+   */
+  public long sum(int x0, int y0, int x1, int y1){
+    if(x1 < x0 || y1 < y0) return 0;
+    return prefix(x1 + 1, y1 + 1) - prefix(x0, y1 + 1)
+         - prefix(x1 + 1, y0) + prefix(x0, y0);
+  }
+
+  /**
+   * Get the amount of grass in a rectangle on the torus. The
+   * rectangle may start anywhere and wraps around the edges of
+   * the space; it is clipped to the size of the space.
+   * @param x X coordinate of the rectangle's lower corner
+   * @param y Y coordinate of the rectangle's lower corner
+   * @param width width of the rectangle
+   * @param height height of the rectangle
+   * @return the total grass in the rectangle
+   */
+  public long sumWrapped(int x, int y, int width, int height){
+    width = Math.min(width, xSize);
+    height = Math.min(height, ySize);
+    if(width <= 0 || height <= 0) return 0;
+    x = ((x % xSize) + xSize) % xSize;
+    y = ((y % ySize) + ySize) % ySize;
+
+    int xEnd = Math.min(x + width, xSize) - 1;
+    int xRest = x + width - xSize;
+    int yEnd = Math.min(y + height, ySize) - 1;
+    int yRest = y + height - ySize;
+
+    long sum = sum(x, y, xEnd, yEnd);
+    if(xRest > 0) sum += sum(0, y, xRest - 1, yEnd);
+    if(yRest > 0) sum += sum(x, 0, xEnd, yRest - 1);
+    if(xRest > 0 && yRest > 0) sum += sum(0, 0, xRest - 1, yRest - 1);
+    return sum;
+  }
+
+  /**
+   * Get the total grass in the indexed space
+   * @return the total grass, in O(1)
+   */
+  public long getTotal(){
+    return total;
+  }
+}
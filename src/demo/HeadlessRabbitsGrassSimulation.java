@@ -0,0 +1,252 @@
+// HeadlessRabbitsGrassSimulation
+package demo;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the rabbits grass model without a GUI, keeping the rabbits
+ * in a CompactAgentStore instead of one RabbitsGrassSimulationAgent
+ * object each, so that very large populations fit in memory.
+ *
+ * The rabbits follow the same rules as in RabbitsGrassSimulationModel
+ * and take their parameters from a model object. The space is built
+ * without an agent grid and tracks them through its occupancy bitmap
+ * only; agent objects are made on demand, with getAgentAt for probes
+ * and materializeAgents for displays and charts.
+ */
+public class HeadlessRabbitsGrassSimulation {
+  // Ticks between grass spreads, as scheduled by the GUI model
+  private static final int SPREAD_INTERVAL = 10;
+
+  private RabbitsGrassSimulationModel model;
+  private RabbitsGrassSimulationSpace space;
+  private CompactAgentStore store;
+  private long tick;
+
+  /**
+   * Constructor that takes the model whose parameters are used
+   * @param model the model holding the world size, initial number,
+   * growth rate, birth threshold, lifespans and radii to run with
+   */
+  public HeadlessRabbitsGrassSimulation(RabbitsGrassSimulationModel model){
+    this.model = model;
+  }
+
+  /**
+   * Create the space and populate it with grass and rabbits
+   */
+  public void buildModel(){
+    // Rabbits live in the store, so the space needs no grid of agent objects
+    space = new RabbitsGrassSimulationSpace(model.getWorldXSize(), model.getWorldYSize(),
+        RabbitsGrassSimulationSpace.DEFAULT_REGION_SIZE, false);
+    space.spreadGrass(model.getGrowthRate());
+
+    store = new CompactAgentStore(model.getInitialNumber());
+    store.setGrassSeekRadius(model.getGrassSeekRadius());
+    int[] cells = space.sampleFreeCells(model.getInitialNumber());
+    for(int i = 0; i < cells.length; i++){
+      addRabbit(cells[i]);
+    }
+    tick = 0;
+  }
+
+  /**
+   * Add a new rabbit at a free cell
+   * @param cell the index (X * ySize + Y) of the cell
+   */
+  private void addRabbit(int cell){
+    int ySize = space.getSizeY();
+    int x = cell / ySize;
+    int y = cell % ySize;
+    space.claimCell(x, y);
+    // Like a new agent object, a newborn picks its direction before it is placed
+    int direction = RabbitsGrassSimulationAgent.chooseDirection(null, x, y, 0);
+    int minLifespan = model.getAgentMinLifespan();
+    int energy = (int)((Math.random() * (model.getAgentMaxLifespan() - minLifespan)) + minLifespan);
+    store.add(x, y,
+              RabbitsGrassSimulationSpace.getDirectionX(direction),
+              RabbitsGrassSimulationSpace.getDirectionY(direction),
+              energy);
+  }
+
+  /**
+   * Run one tick: step every rabbit in random order, reap the
+   * dead, let rabbits with enough energy reproduce, and spread
+   * grass every SPREAD_INTERVAL ticks
+   */
+  public void step(){
+    // Shuffle the store itself, so the random order costs no memory
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for(int i = store.size() - 1; i > 0; i--){
+      store.swap(i, random.nextInt(i + 1));
+    }
+
+    for(int slot = 0; slot < store.size(); slot++){
+      stepRabbit(slot);
+    }
+
+    reapDeadRabbits();
+    reproduceRabbits();
+
+    tick++;
+    if(tick % SPREAD_INTERVAL == 0){
+      space.spreadGrass(model.getGrowthRate());
+    }
+  }
+
+  /**
+   * A basic 'step' for one rabbit, as in RabbitsGrassSimulationAgent.step
+   */
+  private void stepRabbit(int slot){
+    int x = store.getX(slot);
+    int y = store.getY(slot);
+    int direction = store.getDirection(slot);
+    int xSize = space.getSizeX();
+    int ySize = space.getSizeY();
+    int newX = (x + RabbitsGrassSimulationSpace.getDirectionX(direction) + xSize) % xSize;
+    int newY = (y + RabbitsGrassSimulationSpace.getDirectionY(direction) + ySize) % ySize;
+
+    if(space.moveOccupant(x, y, newX, newY)){
+      x = newX;
+      y = newY;
+      store.setXY(slot, x, y);
+      int energy = store.getEnergy(slot) + space.takeGrassAt(x, y);
+      if(energy > 0){
+        energy--;
+      }
+      store.setEnergy(slot, energy);
+    }
+    store.setDirection(slot,
+        RabbitsGrassSimulationAgent.chooseDirection(space, x, y, store.getGrassSeekRadius()));
+  }
+
+  /**
+   * Remove the rabbits that have run out of energy
+   * @return a count of the rabbits that died
+   */
+  private int reapDeadRabbits(){
+    int count = 0;
+    // Back to front, so the rabbit moved into a freed slot has been checked
+    for(int slot = store.size() - 1; slot >= 0; slot--){
+      if(store.getEnergy(slot) < 1){
+        space.vacateCell(store.getX(slot), store.getY(slot));
+        store.remove(slot);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Let every rabbit over the birth threshold give birth, near
+   * itself if a birth radius is set and anywhere otherwise
+   * @return a count of the rabbits born
+   */
+  private int reproduceRabbits(){
+    int born = 0;
+    int birthRadius = model.getBirthRadius();
+    int parents = store.size();
+    for(int slot = 0; slot < parents; slot++){
+      if(store.getEnergy(slot) > model.getBirthThreshold()){
+        store.setEnergy(slot, store.getEnergy(slot) - 60);
+        int cell = -1;
+        if(birthRadius > 0){
+          cell = space.freeCellNear(store.getX(slot), store.getY(slot), birthRadius);
+        }
+        if(cell < 0){
+          cell = space.randomFreeCell();
+        }
+        if(cell >= 0){
+          addRabbit(cell);
+          born++;
+        }
+      }
+    }
+    return born;
+  }
+
+  /**
+   * Make an agent object for the rabbit at a cell, for probing.
+   * Changes to the object do not affect the simulation.
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return a new agent object, or null if there is no rabbit at X,Y
+   */
+  public RabbitsGrassSimulationAgent getAgentAt(int x, int y){
+    if(!space.IsCellOccupied(x, y)) return null;
+    int slot = store.findSlot(x, y);
+    return slot < 0 ? null : store.materialize(slot, space);
+  }
+
+  /**
+   * Make agent objects for every rabbit, for displays and charts
+   * that need Drawables. Changes to the objects do not affect
+   * the simulation.
+   * @return a new list of agent objects
+   */
+  public ArrayList materializeAgents(){
+    ArrayList agents = new ArrayList(store.size());
+    for(int slot = 0; slot < store.size(); slot++){
+      agents.add(store.materialize(slot, space));
+    }
+    return agents;
+  }
+
+  /**
+   * Get the number of living rabbits
+   * @return the number of rabbits in the store
+   */
+  public int getAgentCount(){
+    return store.size();
+  }
+
+  /**
+   * Get the number of ticks run since the model was built
+   * @return the tick count
+   */
+  public long getTick(){
+    return tick;
+  }
+
+  /**
+   * Get the space the rabbits live in
+   * @return the space object
+   */
+  public RabbitsGrassSimulationSpace getSpace(){
+    return space;
+  }
+
+  /**
+   * Get the store holding the rabbits
+   * @return the compact agent store
+   */
+  public CompactAgentStore getStore(){
+    return store;
+  }
+
+  /**
+   * Main method; runs the model headless.
+   * @param args optionally, in order: the number of ticks to run
+   * (default 1000), the world X size, the world Y size, the initial
+   * number of rabbits and the growth rate; parameters not given
+   * keep the model's defaults
+   */
+  public static void main(String[] args) {
+    int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    RabbitsGrassSimulationModel model = new RabbitsGrassSimulationModel();
+    if(args.length > 1) model.setWorldXSize(Integer.parseInt(args[1]));
+    if(args.length > 2) model.setWorldYSize(Integer.parseInt(args[2]));
+    if(args.length > 3) model.setInitialNumber(Integer.parseInt(args[3]));
+    if(args.length > 4) model.setGrowthRate(Integer.parseInt(args[4]));
+
+    HeadlessRabbitsGrassSimulation sim = new HeadlessRabbitsGrassSimulation(model);
+    sim.buildModel();
+    for(int i = 0; i < ticks; i++){
+      sim.step();
+      if(sim.getTick() % SPREAD_INTERVAL == 0){
+        System.out.println("Number of living Rabbits is: " + sim.getAgentCount());
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+// MortonOrder
+package demo;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Z-order (Morton) ordering of agents, for stepping them in an
+ * order that walks the space a small neighborhood at a time.
+ *
+ * Agents sorted by the Morton code of their position sit next to
+ * agents that are near them in the space, so stepping them in that
+ * order touches the grids cache line by cache line rather than at
+ * random. To keep the update order fair, the sorted agents are cut
+ * into small blocks; each tick the blocks are stepped in a random
+ * order and the agents inside each block are shuffled.
+ */
+public class MortonOrder {
+
+  /**
+   * Number of consecutive agents that are stepped together
+   */
+  public static final int BLOCK_SIZE = 256;
+
+  private static final Comparator BY_MORTON_CODE = new Comparator(){
+    public int compare(Object o1, Object o2){
+      long k1 = code((RabbitsGrassSimulationAgent)o1);
+      long k2 = code((RabbitsGrassSimulationAgent)o2);
+      return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+    }
+  };
+
+  /**
+   * Get the Morton code of a cell: the bits of X and Y interleaved
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return the cell's position along the Z-order curve
+   */
+  public static long code(int x, int y){
+    return (spread(x) << 1) | spread(y);
+  }
+
+  private static long code(RabbitsGrassSimulationAgent agent){
+    return code(agent.getX(), agent.getY());
+  }
+
+  /**
+   * Spread the low 32 bits of a value out to the even bits of a long
+   */
+  private static long spread(int v){
+    long x = v & 0xFFFFFFFFL;
+    x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+    x = (x | (x << 8))  & 0x00FF00FF00FF00FFL;
+    x = (x | (x << 4))  & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | (x << 2))  & 0x3333333333333333L;
+    x = (x | (x << 1))  & 0x5555555555555555L;
+    return x;
+  }
+
+  /**
+   * Sort a list of agents into Z-order. Rabbits move at most one
+   * cell per tick, so a list sorted on the previous tick is still
+   * almost sorted; the merge sort used here finds the sorted runs
+   * and re-sorts such a list in close to linear time.
+   * @param agents the list of agents to sort
+   */
+  public static void sort(List agents){
+    Collections.sort(agents, BY_MORTON_CODE);
+  }
+
+  /**
+   * Build a randomized stepping order for a list sorted with sort.
+   * The list is cut into blocks of BLOCK_SIZE, starting at a random
+   * offset so block edges move from tick to tick; the blocks are
+   * visited in random order and shuffled internally.
+   * @param n the number of agents
+   * @return a permutation of 0..n-1 giving the order to step them in
+   */
+  public static int[] blockShuffledOrder(int n){
+    int offset = (int)(Math.random() * BLOCK_SIZE);
+    int blocks = (n + offset + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+    int[] blockOrder = new int[blocks];
+    for(int b = 0; b < blocks; b++) blockOrder[b] = b;
+    shuffle(blockOrder, 0, blocks);
+
+    int[] order = new int[n];
+    int k = 0;
+    for(int b = 0; b < blocks; b++){
+      int start = Math.max(blockOrder[b] * BLOCK_SIZE - offset, 0);
+      int end = Math.min((blockOrder[b] + 1) * BLOCK_SIZE - offset, n);
+      int first = k;
+      for(int i = start; i < end; i++) order[k++] = i;
+      shuffle(order, first, k);
+    }
+    return order;
+  }
+
+  private static void shuffle(int[] a, int from, int to){
+    for(int i = to - 1; i > from; i--){
+      int j = from + (int)(Math.random() * (i - from + 1));
+      int t = a[i];
+      a[i] = a[j];
+      a[j] = t;
+    }
+  }
+}
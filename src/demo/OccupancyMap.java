@@ -0,0 +1,205 @@
+// OccupancyMap
+package demo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Dense bitmap of which cells of a RabbitsGrassSimulationSpace hold a rabbit.
+ *
+ * One bit per cell, with cell X,Y at bit X * ySize + Y, so that a
+ * column of the space is a run of consecutive bits and one load
+ * answers for 64 cells. The space keeps the bitmap in lockstep with
+ * its agent grid. The atomic methods claim and release cells with
+ * compare-and-set, so that several threads can move rabbits without
+ * locking; the plain methods are for single-threaded use.
+ */
+public class OccupancyMap {
+  private static final VarHandle WORDS =
+      MethodHandles.arrayElementVarHandle(long[].class);
+
+  private int xSize;
+  private int ySize;
+  private long[] words;
+
+  /**
+   * Constructor that takes as arguments the x,y dimensions
+   * of the space. All cells start unoccupied.
+   * @param xSize size of X dimension
+   * @param ySize size of Y dimension
+   */
+  public OccupancyMap(int xSize, int ySize){
+    this.xSize = xSize;
+    this.ySize = ySize;
+    words = new long[(int)(((long)xSize * ySize + 63) >>> 6)];
+  }
+
+  /**
+   * Get the number of cells covered by the bitmap
+   * @return xSize * ySize
+   */
+  public int size(){
+    return xSize * ySize;
+  }
+
+  /**
+   * Get the bit index of a cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return the index of the cell's bit
+   */
+  public int indexOf(int x, int y){
+    return x * ySize + y;
+  }
+
+  /**
+   * Determine if a cell is occupied
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return true if the cell's bit is set
+   */
+  public boolean isOccupied(int x, int y){
+    int i = indexOf(x, y);
+    return (words[i >>> 6] & (1L << i)) != 0;
+  }
+
+  /**
+   * Mark a cell as occupied
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   */
+  public void set(int x, int y){
+    int i = indexOf(x, y);
+    words[i >>> 6] |= 1L << i;
+  }
+
+  /**
+   * Mark a cell as free
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   */
+  public void clear(int x, int y){
+    int i = indexOf(x, y);
+    words[i >>> 6] &= ~(1L << i);
+  }
+
+  /**
+   * Atomically claim a free cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return true if this call set the cell's bit, false if the
+   * cell was already occupied
+   */
+  public boolean tryClaim(int x, int y){
+    return tryClaim(indexOf(x, y));
+  }
+
+  /**
+   * Atomically claim a free cell by its bit index
+   * @param i the index of the cell's bit
+   * @return true if this call set the bit, false if it was already set
+   */
+  public boolean tryClaim(int i){
+    int w = i >>> 6;
+    long bit = 1L << i;
+    long old = (long)WORDS.getVolatile(words, w);
+    while((old & bit) == 0){
+      long witness = (long)WORDS.compareAndExchange(words, w, old, old | bit);
+      if(witness == old) return true;
+      old = witness;
+    }
+    return false;
+  }
+
+  /**
+   * Atomically release a cell claimed with tryClaim
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   */
+  public void release(int x, int y){
+    int i = indexOf(x, y);
+    WORDS.getAndBitwiseAnd(words, i >>> 6, ~(1L << i));
+  }
+
+  /**
+   * Find the first free cell at or after a bit index, reading
+   * 64 cells per load
+   * @param from the bit index to start at
+   * @return the bit index of the first free cell, or -1 if there is none
+   */
+  public int nextFree(int from){
+    int size = size();
+    if(from >= size) return -1;
+    int w = from >>> 6;
+    long free = ~words[w] & (-1L << from);
+    while(true){
+      if(free != 0){
+        int i = (w << 6) + Long.numberOfTrailingZeros(free);
+        return i < size ? i : -1;
+      }
+      if(++w == words.length) return -1;
+      free = ~words[w];
+    }
+  }
+
+  /**
+   * Count the free cells in a run of bits, reading 64 cells per load
+   * @param from the first bit index of the run
+   * @param to one past the last bit index of the run
+   * @return the number of free cells in the run
+   */
+  public int countFree(int from, int to){
+    if(to <= from) return 0;
+    int occupied = 0;
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    for(int w = first; w <= last; w++){
+      long word = words[w];
+      if(w == first) word &= -1L << from;
+      if(w == last) word &= -1L >>> (63 - ((to - 1) & 63));
+      occupied += Long.bitCount(word);
+    }
+    return (to - from) - occupied;
+  }
+
+  /**
+   * Turn ranks among the free cells into the bit indexes of those
+   * cells: rank 0 is the first free cell, rank 1 the second, and so on.
+   * Uses a table of free cells per word, 1/64 the size of the space,
+   * and converts the ranks in parallel.
+   * @param ranks ranks of free cells, each less than the number of
+   * free cells; replaced by the cells' bit indexes
+   */
+  public void selectFree(final int[] ranks){
+    // before[w] = number of free cells in the words ahead of word w
+    final int[] before = new int[words.length];
+    IntStream.range(0, words.length).parallel().forEach(w -> {
+      before[w] = countFree(w << 6, Math.min((w + 1) << 6, size()));
+    });
+    int carry = 0;
+    for(int w = 0; w < before.length; w++){
+      int free = before[w];
+      before[w] = carry;
+      carry += free;
+    }
+
+    IntStream.range(0, ranks.length).parallel().forEach(k -> {
+      int rank = ranks[k];
+      int w = Arrays.binarySearch(before, rank);
+      if(w < 0){
+        w = -w - 2;
+      }
+      else{
+        // Skip words holding no free cells, which share their successor's count
+        while(w + 1 < before.length && before[w + 1] == rank) w++;
+      }
+      long free = ~words[w];
+      for(int skip = rank - before[w]; skip > 0; skip--){
+        free &= free - 1;
+      }
+      ranks[k] = (w << 6) + Long.numberOfTrailingZeros(free);
+    });
+  }
+}
@@ -29,6 +29,7 @@ public class RabbitsGrassSimulationAgent implements Drawable{
   private int ID;
   private RabbitsGrassSimulationSpace cdSpace;
   private int reproduceNumber = 0;
+  private int grassSeekRadius = 0;
   
 
   /**
@@ -43,23 +44,76 @@ public class RabbitsGrassSimulationAgent implements Drawable{
     setVxVy();
     energy = 
         (int)((Math.random() * (maxLifeSpan - minLifeSpan)) + minLifeSpan);
+    ID = nextID();
+  }
+
+  /**
+   * Constructor used to materialize an agent whose state is
+   * held elsewhere, for example in a CompactAgentStore
+   * @param x the agent's X position
+   * @param y the agent's Y position
+   * @param vX the agent's velocity in the X direction
+   * @param vY the agent's velocity in the Y direction
+   * @param energy the agent's energy
+   * @param reproduceNumber the agent's reproduce state
+   * @param ID the agent's unique ID number
+   */
+  RabbitsGrassSimulationAgent(int x, int y, int vX, int vY, int energy,
+                              int reproduceNumber, int ID){
+    this.x = x;
+    this.y = y;
+    this.vX = vX;
+    this.vY = vY;
+    this.energy = energy;
+    this.reproduceNumber = reproduceNumber;
+    this.ID = ID;
+  }
+
+  /**
+   * Hand out the next unique agent ID number
+   * @return a new ID number
+   */
+  static int nextID(){
     IDNumber++;
-    ID = IDNumber;
+    return IDNumber;
   }
 
   /**
    * Set this agent's velocity in the X and Y directon
    * Actually chooses a new velocity randomly; velocity
    * will be one of the 8 possible variations where
-   * X and Y are -1, 0, or 1 and Y but both are not zero and both are not non-zero
+   * X and Y are -1, 0, or 1 and Y but both are not zero and both are not non-zero.
+   * If the agent is seeking grass it heads for the richest
+   * neighboring region instead, when there is grass nearby.
    */
   private void setVxVy(){
-    vX = 0;
-    vY = 0;
-    while(vX*vY!=0 || vX+vY == 0){
-      vX = (int)Math.floor(Math.random() * 3) - 1;
-      vY = (int)Math.floor(Math.random() * 3) - 1;
+    int direction = chooseDirection(cdSpace, x, y, grassSeekRadius);
+    vX = RabbitsGrassSimulationSpace.getDirectionX(direction);
+    vY = RabbitsGrassSimulationSpace.getDirectionY(direction);
+  }
+
+  /**
+   * Choose the direction a rabbit at X,Y heads in next, by the
+   * rules described for setVxVy. Shared with the compact,
+   * object-free simulation so both move rabbits the same way.
+   * @param space the space the rabbit is in, or null if not yet placed
+   * @param x the rabbit's X position
+   * @param y the rabbit's Y position
+   * @param seekRadius the rabbit's grass seeking radius, 0 if it moves randomly
+   * @return a direction index 0-7, as used by RabbitsGrassSimulationSpace
+   */
+  static int chooseDirection(RabbitsGrassSimulationSpace space, int x, int y, int seekRadius){
+    if(seekRadius > 0 && space != null){
+      int direction = space.getRichestDirection(x, y, seekRadius);
+      if(direction >= 0) return direction;
+    }
+    int dX = 0;
+    int dY = 0;
+    while(dX*dY!=0 || dX+dY == 0){
+      dX = (int)Math.floor(Math.random() * 3) - 1;
+      dY = (int)Math.floor(Math.random() * 3) - 1;
     }
+    return RabbitsGrassSimulationSpace.getDirection(dX, dY);
   }
 
   /**
@@ -87,6 +141,23 @@ public class RabbitsGrassSimulationAgent implements Drawable{
   public void setReproduceNumber(int newRN){
 	  reproduceNumber = newRN;
   }
+  /**
+   * Set how far this agent looks for grass when choosing
+   * a direction. Zero (the default) means moving randomly.
+   * @param radius the size, in cells, of the regions looked at
+   */
+  public void setGrassSeekRadius(int radius){
+    grassSeekRadius = radius;
+  }
+
+  /**
+   * Get how far this agent looks for grass when choosing a direction
+   * @return the grass seeking radius; 0 means moving randomly
+   */
+  public int getGrassSeekRadius(){
+    return grassSeekRadius;
+  }
+
   /**
    * Set this agent's pointer to the space object
    * in which it resides.
@@ -106,6 +177,30 @@ public class RabbitsGrassSimulationAgent implements Drawable{
     return "A-" + ID;
   }
 
+  /**
+   * Get this agent's internal unique ID number
+   * @return the number part of this agent's ID
+   */
+  int getIDNumber(){
+    return ID;
+  }
+
+  /**
+   * Get this agent's velocity in the X direction
+   * @return -1, 0 or 1
+   */
+  public int getVX(){
+    return vX;
+  }
+
+  /**
+   * Get this agent's velocity in the Y direction
+   * @return -1, 0 or 1
+   */
+  public int getVY(){
+    return vY;
+  }
+
   /**
    * Get the amount of grass held by this agent
    * @return the amount of grass this agent has
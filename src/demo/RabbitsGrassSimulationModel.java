@@ -3,6 +3,10 @@ package demo;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 import uchicago.src.sim.analysis.BinDataSource;
 import uchicago.src.sim.analysis.DataSource;
@@ -29,6 +33,14 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
   private static final int AGENT_MAX_LIFESPAN = 70;
   private static final int BRITHTHRESHOLD = 80;
   private static final int INITIALNUMBER = 100;
+  private static final int GRASSSEEKRADIUS = 0;
+  private static final int BIRTHRADIUS = 0;
+  private static final boolean REPORTAGENTS = true;
+  private static final boolean SPATIALORDER = false;
+  private static final boolean PUBLISHSNAPSHOTS = false;
+
+  // Agent list size above which reaping and reproduction scan in parallel
+  private static final int PARALLEL_SCAN = 1 << 14;
 
   private int worldXSize = WORLDXSIZE;
   private int worldYSize = WORLDYSIZE;
@@ -37,6 +49,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
   private int agentMaxLifespan = AGENT_MAX_LIFESPAN;
   private int brithThreshold =  BRITHTHRESHOLD;
   private int initialNumber = INITIALNUMBER;
+  private int grassSeekRadius = GRASSSEEKRADIUS;
+  private int birthRadius = BIRTHRADIUS;
+  private boolean reportAgents = REPORTAGENTS;
+  private boolean spatialOrder = SPATIALORDER;
+  private boolean publishSnapshots = PUBLISHSNAPSHOTS;
   
 
   private Schedule schedule;
@@ -45,6 +62,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
   private ArrayList agentList;
 
+  // Latest consistent view of the model, for other threads to read
+  private volatile SimulationSnapshot latestSnapshot;
+
+  private SimulationMonitor monitor;
+
   private DisplaySurface displaySurf;
 
   private OpenSequenceGraph amountOfGrassInSpace;
@@ -94,6 +116,7 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
     System.out.println("Running setup");
     cdSpace = null;
     agentList = new ArrayList();
+    latestSnapshot = null;
     schedule = new Schedule(5);
 
     // Tear down Displays
@@ -117,6 +140,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
     }
     agentenergyDistribution = null;
 
+    if (monitor != null){
+      monitor.unregister();
+    }
+    monitor = null;
+
     // Create Displays
     displaySurf = new DisplaySurface(this, "Rabbits Grass Model Window 1");
     amountOfGrassInSpace = new OpenSequenceGraph("Amount Of Grass In Space",this);
@@ -127,6 +155,10 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
     registerDisplaySurface("Rabbits Grass Model Window 1", displaySurf);
     this.registerMediaProducer("Plot", amountOfGrassInSpace);
     this.registerMediaProducer("Plot", amountOfEgent); 
+
+    // Register telemetry
+    monitor = new SimulationMonitor(this);
+    monitor.register();
   }
 
   /**
@@ -151,15 +183,21 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
   public void buildModel(){
     System.out.println("Running BuildModel");
     cdSpace = new RabbitsGrassSimulationSpace(worldXSize, worldYSize);
+    cdSpace.setRandomSeed(getRngSeed());
     cdSpace.spreadGrass(growthRate);
 
+    ArrayList newAgents = new ArrayList(initialNumber);
     for(int i = 0; i < initialNumber; i++){
-      addNewAgent();
+      newAgents.add(createAgent());
     }
-    
-    for(int i = 0; i < agentList.size(); i++){
-      RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentList.get(i);
-      cda.report();
+    int placed = cdSpace.addAgents(newAgents);
+    agentList.addAll(newAgents.subList(0, placed));
+
+    if(reportAgents){
+      for(int i = 0; i < agentList.size(); i++){
+        RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentList.get(i);
+        cda.report();
+      }
     }
   }
 
@@ -172,18 +210,45 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
     class CarryDropStep extends BasicAction {
       public void execute() {
-        SimUtilities.shuffle(agentList);
+        double tick = getTickCount();
+
+        TickPhaseEvent phase = new TickPhaseEvent("shuffle", tick);
+        phase.begin();
+        int[] order = null;
+        if(spatialOrder){
+          // Step in Z-order, block by block, for cache locality
+          MortonOrder.sort(agentList);
+          order = MortonOrder.blockShuffledOrder(agentList.size());
+        }
+        else{
+          SimUtilities.shuffle(agentList);
+        }
+        phase.finish(agentList.size());
+
+        phase = new TickPhaseEvent("step", tick);
+        phase.begin();
         for(int i =0; i < agentList.size(); i++){
-          RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentList.get(i);
+          RabbitsGrassSimulationAgent cda =
+              (RabbitsGrassSimulationAgent)agentList.get(order != null ? order[i] : i);
           cda.step();
         }
+        phase.finish(agentList.size());
 
+        phase = new TickPhaseEvent("reap", tick);
+        phase.begin();
         int deadAgents = reapDeadAgents();
 //        for(int i =0; i < deadAgents; i++){
 //          addNewAgent();
 //        }
-        
-        reproduceAgent();
+        phase.finish(agentList.size());
+
+        phase = new TickPhaseEvent("reproduce", tick);
+        phase.begin();
+        int newAgents = reproduceAgent();
+        phase.finish(agentList.size());
+
+        monitor.tickCompleted(tick, agentList.size(), cdSpace.getTotalGrass(),
+                              newAgents, deadAgents);
         displaySurf.updateDisplay();       
         }
     }
@@ -217,11 +282,23 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
     
     class SimulationSpreadGrass extends BasicAction{
     	public void execute(){
+    		TickPhaseEvent phase = new TickPhaseEvent("spread", getTickCount());
+    		phase.begin();
     		cdSpace.spreadGrass(growthRate);
+    		phase.finish(agentList.size());
     		displaySurf.updateDisplay();  
     	}
     }
     schedule.scheduleActionAtInterval(10, new SimulationSpreadGrass());
+
+    // Runs after every other action of the tick, so that each
+    // snapshot holds the whole tick
+    class PublishSnapshot extends BasicAction{
+      public void execute(){
+        publishSnapshot();
+      }
+    }
+    schedule.scheduleActionAtInterval(1, new PublishSnapshot(), Schedule.LAST);
   }
 
   /**
@@ -254,25 +331,79 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
   }
 
   /**
-   * Add a new agent to this model's agent list and agent space
+   * Add a new agent to this model's agent list and agent space.
+   * The agent is only added to the list if the space has room for it.
+   * @return true if the agent was placed, false if the space is full
    */
-  private void addNewAgent(){
-    RabbitsGrassSimulationAgent a = new RabbitsGrassSimulationAgent(agentMinLifespan, agentMaxLifespan);
+  private boolean addNewAgent(){
+    RabbitsGrassSimulationAgent a = createAgent();
+    if(!cdSpace.addAgentAnywhere(a)) return false;
     agentList.add(a);
-    cdSpace.addAgent(a);
+    return true;
   }
-  
-  // reproduce when a rabbit has enough energy and then remove some energy
-  private void reproduceAgent(){
-	   for(int i = (agentList.size() - 1); i >= 0; i--){
-	    RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentList.get(i);
-//	    if ((cda.getEnergy() > brithThreshold) && (cda.getReproduceNumber() != 1)){
-	    if (cda.getEnergy() > brithThreshold) {
-	    	addNewAgent();
-	    	cda.setEnergy(cda.getEnergy() - 60);
-//	    	cda.setReproduceNumber(1);
-	    }
+
+  /**
+   * Add a new agent to this model's agent list and place it
+   * in the agent space near its parent.
+   * The agent is only added to the list if the space has room for it.
+   * @param parent the agent giving birth
+   * @return true if the agent was placed, false if the space is full
+   */
+  private boolean addNewAgentNear(RabbitsGrassSimulationAgent parent){
+    RabbitsGrassSimulationAgent a = createAgent();
+    if(!cdSpace.addAgentNear(a, parent.getX(), parent.getY(), birthRadius)) return false;
+    agentList.add(a);
+    return true;
+  }
+
+  private RabbitsGrassSimulationAgent createAgent(){
+    RabbitsGrassSimulationAgent a = new RabbitsGrassSimulationAgent(agentMinLifespan, agentMaxLifespan);
+    a.setGrassSeekRadius(grassSeekRadius);
+    return a;
+  }
+
+  // reproduce when a rabbit has enough energy and then remove some energy.
+  // Parents are collected first and their offspring placed in one batch;
+  // with a birth radius the batch is ordered by position so that
+  // neighboring births touch neighboring memory.
+  // Returns the number of rabbits born; births that find no free
+  // cell are dropped.
+  private int reproduceAgent(){
+	   // Scan for parents (in parallel on large populations), then
+	   // commit them in the same back-to-front order as a serial walk
+	   int[] parentIndexes = scanAgents(i -> getAgent(i).getEnergy() > brithThreshold);
+	   ArrayList parents = new ArrayList(parentIndexes.length);
+	   for(int k = parentIndexes.length - 1; k >= 0; k--){
+	    RabbitsGrassSimulationAgent cda = getAgent(parentIndexes[k]);
+	    parents.add(cda);
+	    cda.setEnergy(cda.getEnergy() - 60);
+//	    cda.setReproduceNumber(1);
 	   }
+
+	   if (birthRadius > 0) {
+	     Collections.sort(parents, new Comparator(){
+	       public int compare(Object o1, Object o2){
+	         RabbitsGrassSimulationAgent a1 = (RabbitsGrassSimulationAgent)o1;
+	         RabbitsGrassSimulationAgent a2 = (RabbitsGrassSimulationAgent)o2;
+	         if (a1.getX() != a2.getX()) return a1.getX() < a2.getX() ? -1 : 1;
+	         if (a1.getY() != a2.getY()) return a1.getY() < a2.getY() ? -1 : 1;
+	         return 0;
+	       }
+	     });
+	   }
+
+	   int born = 0;
+	   for(int i = 0; i < parents.size(); i++){
+	     boolean placed;
+	     if (birthRadius > 0) {
+	       placed = addNewAgentNear((RabbitsGrassSimulationAgent)parents.get(i));
+	     }
+	     else {
+	       placed = addNewAgent();
+	     }
+	     if (placed) born++;
+	   }
+	   return born;
   }
 
   /**
@@ -281,17 +412,66 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
    * @return a count of the agents that died
    */
   private int reapDeadAgents(){
-    int count = 0;
-    for(int i = (agentList.size() - 1); i >= 0 ; i--){
-      RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentList.get(i);
-      if(cda.getEnergy() < 1){
+    int[] dead = scanAgents(i -> getAgent(i).getEnergy() < 1);
+    if(dead.length == 0) return 0;
+
+    // Take the dead out of the space, then close the gaps they
+    // leave in the agent list in a single pass
+    int next = 0;
+    int kept = dead[0];
+    for(int i = dead[0]; i < agentList.size(); i++){
+      RabbitsGrassSimulationAgent cda = getAgent(i);
+      if(next < dead.length && dead[next] == i){
         cdSpace.removeAgentAt(cda.getX(), cda.getY());
 //        cdSpace.spreadGrass(cda.getGrass());
-        agentList.remove(i);
-        count++;
+        next++;
+      }
+      else{
+        agentList.set(kept++, cda);
       }
     }
-    return count;
+    agentList.subList(kept, agentList.size()).clear();
+    return dead.length;
+  }
+
+  /**
+   * Find the agents on the agent list that pass a test. Large lists
+   * are scanned in parallel; the test must only read the agents.
+   * @param test the test to apply to each agent's index
+   * @return the indexes of the agents that passed, in ascending order
+   */
+  private int[] scanAgents(IntPredicate test){
+    IntStream indexes = IntStream.range(0, agentList.size());
+    if(agentList.size() >= PARALLEL_SCAN){
+      indexes = indexes.parallel();
+    }
+    return indexes.filter(test).toArray();
+  }
+
+  private RabbitsGrassSimulationAgent getAgent(int i){
+    return (RabbitsGrassSimulationAgent)agentList.get(i);
+  }
+
+  /**
+   * Publish a snapshot of the current state of the model, if
+   * snapshots are turned on. Scheduled once per tick, after every
+   * action that changes the world, so readers only ever see whole ticks.
+   */
+  private void publishSnapshot(){
+    if(publishSnapshots){
+      latestSnapshot = new SimulationSnapshot(getTickCount(), cdSpace,
+          cdSpace.snapshotGrassTiles(), agentList);
+    }
+  }
+
+  /**
+   * Get the most recently published snapshot of the model.
+   * Safe to call from any thread; the snapshot returned never
+   * changes, however far the model runs on.
+   * @return the latest snapshot, or null if none has been published
+   */
+  public SimulationSnapshot getLatestSnapshot(){
+    return latestSnapshot;
   }
 
   /**
@@ -333,7 +513,7 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
    * that can be modified by the RePast user interface
    */
   public String[] getInitParam(){
-    String[] initParams = { "InitialNumber", "WorldXSize", "WorldYSize", "GrowthRate", "BirthThreshold"};
+    String[] initParams = { "InitialNumber", "WorldXSize", "WorldYSize", "GrowthRate", "BirthThreshold", "GrassSeekRadius", "BirthRadius", "ReportAgents", "SpatialOrder", "PublishSnapshots"};
     return initParams;
   }
   /**
@@ -415,6 +595,91 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	  brithThreshold = i;
   }
 
+  /**
+   * Get how far rabbits look for grass when choosing a direction
+   * @return the grass seeking radius; 0 means rabbits move randomly
+   */
+  public int getGrassSeekRadius() {
+    return grassSeekRadius;
+  }
+
+  /**
+   * Set how far rabbits look for grass when choosing a direction
+   * @param i the new grass seeking radius; 0 means rabbits move randomly
+   */
+  public void setGrassSeekRadius(int i) {
+    grassSeekRadius = i;
+  }
+
+  /**
+   * Get how far from its parent a newborn rabbit may be placed
+   * @return the birth radius; 0 means anywhere in the world
+   */
+  public int getBirthRadius() {
+    return birthRadius;
+  }
+
+  /**
+   * Set how far from its parent a newborn rabbit may be placed
+   * @param i the new birth radius; 0 means anywhere in the world
+   */
+  public void setBirthRadius(int i) {
+    birthRadius = i;
+  }
+
+  /**
+   * Get whether each initial agent is reported when the model is built
+   * @return true if the initial agents are reported
+   */
+  public boolean getReportAgents() {
+    return reportAgents;
+  }
+
+  /**
+   * Set whether each initial agent is reported when the model is built.
+   * Turn this off for large initial populations.
+   * @param b true to report the initial agents
+   */
+  public void setReportAgents(boolean b) {
+    reportAgents = b;
+  }
+
+  /**
+   * Get whether agents are stepped in spatial (Z-order) order
+   * @return true if agents are stepped in Z-order blocks, false
+   * if the whole agent list is shuffled every tick
+   */
+  public boolean getSpatialOrder() {
+    return spatialOrder;
+  }
+
+  /**
+   * Set whether agents are stepped in spatial (Z-order) order.
+   * This is faster on large worlds; block shuffling keeps the
+   * update order random at the scale of a block.
+   * @param b true to step agents in Z-order blocks
+   */
+  public void setSpatialOrder(boolean b) {
+    spatialOrder = b;
+  }
+
+  /**
+   * Get whether snapshots of the model are published each tick
+   * @return true if snapshots are published
+   */
+  public boolean getPublishSnapshots() {
+    return publishSnapshots;
+  }
+
+  /**
+   * Set whether snapshots of the model are published each tick,
+   * for analysis and export threads to read with getLatestSnapshot
+   * @param b true to publish snapshots
+   */
+  public void setPublishSnapshots(boolean b) {
+    publishSnapshots = b;
+  }
+
   /**
    * Get the maximum value for an agent's lifespan
    * @return the maximum value for an agent's lifespan
@@ -1,6 +1,12 @@
 // RabbitsGrassSpace
 package demo;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
 import uchicago.src.sim.space.Object2DGrid; 
 
 /**
@@ -18,6 +24,30 @@ import uchicago.src.sim.space.Object2DGrid;
 public class RabbitsGrassSimulationSpace {
 private Object2DGrid grassSpace;
 private Object2DGrid agentSpace;
+private GrassIndex grassIndex;
+private RegionStats regionStats;
+private OccupancyMap occupancy;
+private int[][] snapshotTiles;
+private SplittableRandom random = new SplittableRandom();
+private boolean[] dirtyTiles;
+private boolean grassChanged;
+
+  // Default width and height, in cells, of a statistics region
+  public static final int DEFAULT_REGION_SIZE = 64;
+
+  // Shared value for empty grass cells, so they need not each box their own
+  private static final Integer NO_GRASS = Integer.valueOf(0);
+
+  // Amount of grass above which spreadGrass tallies in parallel
+  private static final int BULK_GRASS = 1 << 16;
+
+  // Number of independently seeded pieces parallel work is cut into;
+  // fixed, so results do not depend on the number of cores
+  private static final int CHUNKS = 64;
+
+  // Offsets of the 8 directions an agent can move in
+  private static final int[] DIRECTION_X = {-1, -1, -1, 0, 0, 1, 1, 1};
+  private static final int[] DIRECTION_Y = {-1, 0, 1, -1, 1, -1, 0, 1};
 
   /**
    * Constructor that takes as arguments to x,y dimensions
@@ -26,14 +56,52 @@ private Object2DGrid agentSpace;
    * @param ySize size of Y dimension
    */
   public RabbitsGrassSimulationSpace(int xSize, int ySize){
+    this(xSize, ySize, DEFAULT_REGION_SIZE);
+  }
+
+  /**
+   * Constructor that takes as arguments to x,y dimensions
+   * of the space to be created and the size of the regions
+   * used for density statistics
+   * @param xSize size of X dimension
+   * @param ySize size of Y dimension
+   * @param regionSize width and height of a statistics region
+   */
+  public RabbitsGrassSimulationSpace(int xSize, int ySize, int regionSize){
+    this(xSize, ySize, regionSize, true);
+  }
+
+  /**
+   * Constructor that takes as arguments to x,y dimensions
+   * of the space to be created, the size of the regions
+   * used for density statistics, and whether to keep a grid
+   * of agent objects. A space without an agent grid tracks
+   * rabbits through claimCell, vacateCell and moveOccupant
+   * only, saving a reference per cell; the methods that take
+   * agent objects throw IllegalStateException on it.
+   * @param xSize size of X dimension
+   * @param ySize size of Y dimension
+   * @param regionSize width and height of a statistics region
+   * @param agentGrid true to keep a grid of agent objects
+   */
+  public RabbitsGrassSimulationSpace(int xSize, int ySize, int regionSize, boolean agentGrid){
     grassSpace = new Object2DGrid(xSize, ySize);
-    agentSpace = new Object2DGrid(xSize, ySize);
+    if(agentGrid){
+      agentSpace = new Object2DGrid(xSize, ySize);
+    }
+    grassIndex = new GrassIndex(xSize, ySize);
+    regionStats = new RegionStats(xSize, ySize, regionSize);
+    occupancy = new OccupancyMap(xSize, ySize);
+    dirtyTiles = new boolean[regionStats.getRegionsX() * regionStats.getRegionsY()];
 
-    for(int i = 0; i < xSize; i++){
-      for(int j = 0; j < ySize; j++){
-        grassSpace.putObjectAt(i,j,new Integer(0));
+    // Columns are independent, so fill them in parallel
+    final Object2DGrid grid = grassSpace;
+    final int height = ySize;
+    IntStream.range(0, xSize).parallel().forEach(i -> {
+      for(int j = 0; j < height; j++){
+        grid.putObjectAt(i,j,NO_GRASS);
       }
-    }
+    });
   }
 
   /**
@@ -42,6 +110,11 @@ private Object2DGrid agentSpace;
    * @param grass the (total) amount of grass to be distributed
    */
   public void spreadGrass(int grass){
+    if(grass >= BULK_GRASS){
+      spreadGrassBulk(grass);
+      return;
+    }
+
     // Randomly place grass in grassSpace
     for(int i = 0; i < grass; i++){
 
@@ -53,6 +126,50 @@ private Object2DGrid agentSpace;
       int currentValue = getgrassAt(x, y);
       // Replace the Integer object with another one with the new value
       grassSpace.putObjectAt(x,y,new Integer(currentValue + 1));
+      grassIndex.add(x, y, 1);
+      regionStats.addGrass(x, y, 1);
+      markGrassChanged(x, y);
+    }
+  }
+
+  /**
+   * Randomly distributes a large amount of grass around the landscape.
+   * The cells receiving grass are drawn in parallel and tallied,
+   * then each cell and the indexes are updated once.
+   * @param grass the (total) amount of grass to be distributed
+   */
+  private void spreadGrassBulk(final int grass){
+    final int xSize = grassSpace.getSizeX();
+    final int ySize = grassSpace.getSizeY();
+    final AtomicIntegerArray counts = new AtomicIntegerArray(xSize * ySize);
+    final SplittableRandom[] randoms = splitRandom();
+
+    // Each chunk draws from its own generator; the tallies add up
+    // the same whichever thread runs which chunk
+    IntStream.range(0, CHUNKS).parallel().forEach(c -> {
+      SplittableRandom chunkRandom = randoms[c];
+      int share = grass / CHUNKS + (c < grass % CHUNKS ? 1 : 0);
+      for(int i = 0; i < share; i++){
+        counts.incrementAndGet(chunkRandom.nextInt(xSize) * ySize + chunkRandom.nextInt(ySize));
+      }
+    });
+
+    IntStream.range(0, xSize).parallel().forEach(x -> {
+      for(int y = 0; y < ySize; y++){
+        int added = counts.get(x * ySize + y);
+        if(added > 0){
+          grassSpace.putObjectAt(x,y,Integer.valueOf(getgrassAt(x, y) + added));
+          markGrassChanged(x, y);
+        }
+      }
+    });
+
+    grassIndex.rebuild(this::getgrassAt);
+    for(int x = 0; x < xSize; x++){
+      for(int y = 0; y < ySize; y++){
+        int added = counts.get(x * ySize + y);
+        if(added > 0) regionStats.addGrass(x, y, added);
+      }
     }
   }
 
@@ -83,7 +200,7 @@ private Object2DGrid agentSpace;
    */
   public RabbitsGrassSimulationAgent getAgentAt(int x, int y){
     RabbitsGrassSimulationAgent retVal = null;
-    if(agentSpace.getObjectAt(x, y) != null){
+    if(agentSpace != null && agentSpace.getObjectAt(x, y) != null){
       retVal = (RabbitsGrassSimulationAgent)agentSpace.getObjectAt(x,y);
     }
     return retVal;
@@ -97,14 +214,90 @@ private Object2DGrid agentSpace;
     return grassSpace;
   }
 
+  /**
+   * Get the width of this space
+   * @return the size of the X dimension
+   */
+  public int getSizeX(){
+    return grassSpace.getSizeX();
+  }
+
+  /**
+   * Get the height of this space
+   * @return the size of the Y dimension
+   */
+  public int getSizeY(){
+    return grassSpace.getSizeY();
+  }
+
   /**
    * Get the 'agent space' object
-   * @return the Object2DGrid object in which agents are stored
+   * @return the Object2DGrid object in which agents are stored,
+   * or null if this space was built without an agent grid
    */
   public Object2DGrid getCurrentAgentSpace(){
     return agentSpace;
   }
 
+  /**
+   * Get the per-region density statistics for this space
+   * @return the RegionStats object kept current by this space
+   */
+  public RegionStats getRegionStats(){
+    return regionStats;
+  }
+
+  /**
+   * Copy the grass in this space into plain arrays, one per
+   * statistics region, for a SimulationSnapshot. Regions whose
+   * grass has not changed since the last call are shared with the
+   * previous result instead of being copied again, and if no grass
+   * changed at all the previous result is returned as it is, so
+   * callers must never write to the arrays returned.
+   * @return the grass in each region, indexed as in RegionStats,
+   * with the cells of a region in column order
+   */
+  int[][] snapshotGrassTiles(){
+    if(snapshotTiles != null && !grassChanged){
+      return snapshotTiles;
+    }
+    int xSize = grassSpace.getSizeX();
+    int ySize = grassSpace.getSizeY();
+    int regionSize = regionStats.getRegionSize();
+    int regionsY = regionStats.getRegionsY();
+    int[][] tiles = new int[dirtyTiles.length][];
+    for(int tile = 0; tile < tiles.length; tile++){
+      if(snapshotTiles != null && !dirtyTiles[tile]){
+        tiles[tile] = snapshotTiles[tile];
+        continue;
+      }
+      int x0 = (tile / regionsY) * regionSize;
+      int y0 = (tile % regionsY) * regionSize;
+      int x1 = Math.min(x0 + regionSize, xSize);
+      int y1 = Math.min(y0 + regionSize, ySize);
+      int[] cells = new int[(x1 - x0) * (y1 - y0)];
+      int k = 0;
+      for(int x = x0; x < x1; x++){
+        for(int y = y0; y < y1; y++){
+          cells[k++] = getgrassAt(x, y);
+        }
+      }
+      tiles[tile] = cells;
+      dirtyTiles[tile] = false;
+    }
+    grassChanged = false;
+    snapshotTiles = tiles;
+    return tiles;
+  }
+
+  /**
+   * Note that the grass at a cell has changed since the last snapshot
+   */
+  private void markGrassChanged(int x, int y){
+    dirtyTiles[regionStats.regionOf(x, y)] = true;
+    grassChanged = true;
+  }
+
   /**
    * Determine if a given cell is occupied
    * @param x X coordinate of the desired cell
@@ -112,9 +305,15 @@ private Object2DGrid agentSpace;
    * @return True if there is an agent at X,Y, false otherwise
    */
   public boolean IsCellOccupied(int x, int y){
-    boolean retVal = false;
-    if(agentSpace.getObjectAt(x, y)!=null) retVal = true;
-    return retVal;
+    return occupancy.isOccupied(x, y);
+  }
+
+  /**
+   * Get the occupancy bitmap of this space
+   * @return the OccupancyMap kept in lockstep with the agent space
+   */
+  public OccupancyMap getOccupancy(){
+    return occupancy;
   }
 
   /**
@@ -130,29 +329,340 @@ private Object2DGrid agentSpace;
   public boolean addAgent(RabbitsGrassSimulationAgent agent){
     boolean retVal = false;
     int count = 0;
-    int countLimit = 10 * agentSpace.getSizeX() * agentSpace.getSizeY();
+    int countLimit = 10 * getSizeX() * getSizeY();
 
     while((retVal==false) && (count < countLimit)){
-      int x = (int)(Math.random()*(agentSpace.getSizeX()));
-      int y = (int)(Math.random()*(agentSpace.getSizeY()));
+      int x = (int)(Math.random()*(getSizeX()));
+      int y = (int)(Math.random()*(getSizeY()));
       if(IsCellOccupied(x,y) == false){
-        agentSpace.putObjectAt(x,y,agent);
-        agent.setXY(x,y);
-        agent.setRabbitsGrassSimulationSpace(this);
+        placeAgentAt(x, y, agent);
         retVal = true;
       }
+      count++;
     }
 
     return retVal;
   }
 
+  /**
+   * Add a batch of agents to this space, each in its own
+   * randomly chosen unoccupied cell. Rather than trying cells
+   * until a free one turns up, this draws the cells as a random
+   * sample of the free cells, so it never collides and its cost
+   * does not grow as the space fills up.
+   * Agents are placed in list order; if there are fewer free cells
+   * than agents, the agents at the end of the list are not placed.
+   * @param agents The agents to be placed
+   * @return the number of agents that were placed
+   */
+  public int addAgents(List agents){
+    int ySize = getSizeY();
+    int[] cells = sampleFreeCells(agents.size());
+    for(int i = 0; i < cells.length; i++){
+      placeAgentAt(cells[i] / ySize, cells[i] % ySize, (RabbitsGrassSimulationAgent)agents.get(i));
+    }
+    return cells.length;
+  }
+
+  /**
+   * Draw a random sample of distinct unoccupied cells.
+   * @param n the number of cells wanted
+   * @return the indexes (X * ySize + Y) of the cells drawn; fewer
+   * than n if there are not that many free cells
+   */
+  int[] sampleFreeCells(int n){
+    int cells = occupancy.size();
+    int freeCount = occupancy.countFree(0, cells);
+    n = Math.min(n, freeCount);
+
+    // Draw n distinct ranks among the free cells; on an empty
+    // space the ranks are the cell indexes themselves
+    int[] sample = sampleDistinct(n, freeCount);
+    if(freeCount < cells){
+      occupancy.selectFree(sample);
+    }
+    return sample;
+  }
+
+  /**
+   * Draw n distinct numbers from 0 to range-1, in random order.
+   * Small samples are drawn in parallel chunks, each from its own
+   * generator, then duplicates are replaced in order by one pass
+   * over a bitmap of the numbers taken, which needs range/8 bytes
+   * rather than an array of the whole range. Samples of more than
+   * half the range use a partial Fisher-Yates shuffle instead.
+   * Either way the result depends only on this space's seed.
+   */
+  private int[] sampleDistinct(final int n, int range){
+    if(n > range / 2){
+      int[] all = new int[range];
+      for(int i = 0; i < range; i++) all[i] = i;
+      for(int i = 0; i < n; i++){
+        int k = i + random.nextInt(range - i);
+        int t = all[k];
+        all[k] = all[i];
+        all[i] = t;
+      }
+      return Arrays.copyOf(all, n);
+    }
+
+    final int[] sample = new int[n];
+    final SplittableRandom[] randoms = splitRandom();
+    final int bound = range;
+    IntStream.range(0, CHUNKS).parallel().forEach(c -> {
+      SplittableRandom chunkRandom = randoms[c];
+      int from = (int)((long)n * c / CHUNKS);
+      int to = (int)((long)n * (c + 1) / CHUNKS);
+      for(int i = from; i < to; i++){
+        sample[i] = chunkRandom.nextInt(bound);
+      }
+    });
+
+    OccupancyMap drawn = new OccupancyMap(range, 1);
+    for(int i = 0; i < n; i++){
+      while(!drawn.tryClaim(sample[i])){
+        sample[i] = random.nextInt(range);
+      }
+    }
+    return sample;
+  }
+
+  /**
+   * Split off one generator per chunk of parallel work
+   */
+  private SplittableRandom[] splitRandom(){
+    SplittableRandom[] randoms = new SplittableRandom[CHUNKS];
+    for(int c = 0; c < CHUNKS; c++){
+      randoms[c] = random.split();
+    }
+    return randoms;
+  }
+
+  /**
+   * Seed the generator this space uses for bulk grass spreading
+   * and for choosing free cells, so that those are repeatable
+   * @param seed the seed
+   */
+  public void setRandomSeed(long seed){
+    random = new SplittableRandom(seed);
+  }
+
+  /**
+   * Add an agent to this space near a given cell.
+   * Looks at the rings of cells around X,Y, nearest first,
+   * out to maxRadius, and places the agent in a randomly chosen
+   * free cell of the first ring that has one. If all of them are
+   * occupied this falls back to addAgentAnywhere.
+   * @param agent The agent to be placed
+   * @param x X coordinate of the cell to place the agent near
+   * @param y Y coordinate of the cell to place the agent near
+   * @param maxRadius how many rings to search before giving up
+   * @return True if the agent was successfully placed,
+   * false if not
+   */
+  public boolean addAgentNear(RabbitsGrassSimulationAgent agent, int x, int y, int maxRadius){
+    int cell = freeCellNear(x, y, maxRadius);
+    if(cell < 0) return addAgentAnywhere(agent);
+    int ySize = getSizeY();
+    placeAgentAt(cell / ySize, cell % ySize, agent);
+    return true;
+  }
+
+  /**
+   * Add an agent to this space in a randomly chosen unoccupied cell.
+   * Unlike addAgent this makes a bounded number of random tries and
+   * then scans the occupancy bitmap, so it stays cheap on a crowded
+   * space and fails fast on a full one.
+   * @param agent The agent to be placed
+   * @return True if the agent was successfully placed,
+   * false if the space is full
+   */
+  public boolean addAgentAnywhere(RabbitsGrassSimulationAgent agent){
+    int cell = randomFreeCell();
+    if(cell < 0) return false;
+    int ySize = getSizeY();
+    placeAgentAt(cell / ySize, cell % ySize, agent);
+    return true;
+  }
+
+  /**
+   * Find a free cell near a given cell, searching the rings
+   * around it nearest first, out to maxRadius.
+   * @param x X coordinate of the cell to search around
+   * @param y Y coordinate of the cell to search around
+   * @param maxRadius how many rings to search before giving up
+   * @return the index (X * ySize + Y) of a randomly chosen free cell
+   * of the first ring that has one, or -1 if there is none
+   */
+  int freeCellNear(int x, int y, int maxRadius){
+    int xSize = getSizeX();
+    int ySize = getSizeY();
+    // Rings that wrap onto themselves would count cells twice
+    int limit = Math.min(maxRadius, (Math.min(xSize, ySize) - 1) / 2);
+
+    for(int r = 1; r <= limit; r++){
+      // The left and right edges of the ring are runs of consecutive
+      // bits in the occupancy bitmap, counted a word at a time; the
+      // top and bottom edges are strided and looked at cell by cell
+      int left = ((x - r) % xSize + xSize) % xSize;
+      int right = (x + r) % xSize;
+      int bottom = ((y - r) % ySize + ySize) % ySize;
+      int top = (y + r) % ySize;
+      int free = countFreeInColumn(left, bottom, 2 * r + 1)
+               + countFreeInColumn(right, bottom, 2 * r + 1);
+      for(int i = -r + 1; i < r; i++){
+        int cx = ((x + i) % xSize + xSize) % xSize;
+        if(!IsCellOccupied(cx, bottom)) free++;
+        if(!IsCellOccupied(cx, top)) free++;
+      }
+      if(free == 0) continue;
+
+      // Take the k-th free cell of the ring, in the order counted above
+      int k = (int)(Math.random() * free);
+      int cell = nthFreeInColumn(left, bottom, 2 * r + 1, k);
+      if(cell >= 0) return cell;
+      k -= countFreeInColumn(left, bottom, 2 * r + 1);
+      cell = nthFreeInColumn(right, bottom, 2 * r + 1, k);
+      if(cell >= 0) return cell;
+      k -= countFreeInColumn(right, bottom, 2 * r + 1);
+      for(int i = -r + 1; i < r; i++){
+        int cx = ((x + i) % xSize + xSize) % xSize;
+        if(!IsCellOccupied(cx, bottom) && k-- == 0) return cx * ySize + bottom;
+        if(!IsCellOccupied(cx, top) && k-- == 0) return cx * ySize + top;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Count the free cells in a run of a column, wrapping past the top
+   */
+  private int countFreeInColumn(int x, int y, int length){
+    int ySize = getSizeY();
+    int start = x * ySize;
+    int end = y + length;
+    if(end <= ySize){
+      return occupancy.countFree(start + y, start + end);
+    }
+    return occupancy.countFree(start + y, start + ySize)
+         + occupancy.countFree(start, start + end - ySize);
+  }
+
+  /**
+   * Find the k-th (from 0) free cell in a run of a column, wrapping
+   * past the top, skipping occupied cells a word at a time
+   * @return the cell's index, or -1 if the run has k or fewer free cells
+   */
+  private int nthFreeInColumn(int x, int y, int length, int k){
+    int ySize = getSizeY();
+    int start = x * ySize;
+    int end = y + length;
+    int cell = nthFree(start + y, start + Math.min(end, ySize), k);
+    if(cell >= 0 || end <= ySize) return cell;
+    k -= occupancy.countFree(start + y, start + ySize);
+    return nthFree(start, start + end - ySize, k);
+  }
+
+  private int nthFree(int from, int to, int k){
+    for(int i = occupancy.nextFree(from); i >= 0 && i < to; i = occupancy.nextFree(i + 1)){
+      if(k-- == 0) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Find a randomly chosen free cell anywhere in the space.
+   * Tries random cells a few times, then takes the first free
+   * cell after a random starting point.
+   * @return the index (X * ySize + Y) of a free cell, or -1 if
+   * the space is full
+   */
+  int randomFreeCell(){
+    int cells = occupancy.size();
+    for(int tries = 0; tries < 64; tries++){
+      int cell = random.nextInt(cells);
+      if(occupancy.nextFree(cell) == cell) return cell;
+    }
+    int start = random.nextInt(cells);
+    int cell = occupancy.nextFree(start);
+    return cell >= 0 ? cell : occupancy.nextFree(0);
+  }
+
+  /**
+   * Mark a cell as holding a rabbit that has no agent object,
+   * for simulations that keep their rabbits in a CompactAgentStore.
+   * getAgentAt returns null for such rabbits.
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return true if the cell was free and is now occupied
+   */
+  public boolean claimCell(int x, int y){
+    if(IsCellOccupied(x, y)) return false;
+    occupancy.set(x, y);
+    regionStats.addRabbits(x, y, 1);
+    return true;
+  }
+
+  /**
+   * Mark a cell claimed with claimCell as free again
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   */
+  public void vacateCell(int x, int y){
+    if(IsCellOccupied(x, y)){
+      occupancy.clear(x, y);
+      regionStats.addRabbits(x, y, -1);
+    }
+  }
+
+  /**
+   * Move a rabbit that has no agent object from one cell to another
+   * @param x the X coordinate of the original location
+   * @param y the Y coordinate of the original location
+   * @param newX the X coordinate of the destination location
+   * @param newY the Y coordinate of the destination location
+   * @return true if the move was successful, false if the
+   * destination is occupied
+   */
+  public boolean moveOccupant(int x, int y, int newX, int newY){
+    if(IsCellOccupied(newX, newY)) return false;
+    if(IsCellOccupied(x, y)){
+      occupancy.clear(x, y);
+      occupancy.set(newX, newY);
+      regionStats.moveRabbit(x, y, newX, newY);
+    }
+    return true;
+  }
+
+  /**
+   * Put an agent into a cell known to be free
+   */
+  private void placeAgentAt(int x, int y, RabbitsGrassSimulationAgent agent){
+    requireAgentGrid();
+    agentSpace.putObjectAt(x,y,agent);
+    occupancy.set(x, y);
+    regionStats.addRabbits(x, y, 1);
+    agent.setXY(x,y);
+    agent.setRabbitsGrassSimulationSpace(this);
+  }
+
   /**
    * Removes the agent from the specified location.
    * @param x the X coordinate of the cell from which the agent is to be removed
    * @param y the Y coordinate of the cell from which the agent is to be removed
    */
   public void removeAgentAt(int x, int y){
-    agentSpace.putObjectAt(x, y, null);
+    if(IsCellOccupied(x, y)){
+      regionStats.addRabbits(x, y, -1);
+      occupancy.clear(x, y);
+    }
+    if(agentSpace != null) agentSpace.putObjectAt(x, y, null);
+  }
+
+  private void requireAgentGrid(){
+    if(agentSpace == null){
+      throw new IllegalStateException("This space has no agent grid; use claimCell, vacateCell and moveOccupant");
+    }
   }
 
   /**
@@ -163,7 +673,10 @@ private Object2DGrid agentSpace;
    */
   public int takeGrassAt(int x, int y){
     int grass = getgrassAt(x, y);
-    grassSpace.putObjectAt(x, y, new Integer(0));
+    grassSpace.putObjectAt(x, y, NO_GRASS);
+    grassIndex.add(x, y, -grass);
+    regionStats.addGrass(x, y, -grass);
+    if(grass != 0) markGrassChanged(x, y);
     return grass;
   }
 
@@ -181,12 +694,19 @@ private Object2DGrid agentSpace;
    * @return true if the move was successful, false otherwise
    */
   public boolean moveAgentAt(int x, int y, int newX, int newY){
+    requireAgentGrid();
     boolean retVal = false;
     if(!IsCellOccupied(newX, newY)){
+      boolean hadAgent = IsCellOccupied(x, y);
       RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agentSpace.getObjectAt(x, y);
-      removeAgentAt(x,y);
-      cda.setXY(newX, newY);
+      agentSpace.putObjectAt(x, y, null);
+      if(cda != null) cda.setXY(newX, newY);
       agentSpace.putObjectAt(newX, newY, cda);
+      if(hadAgent){
+        occupancy.clear(x, y);
+        occupancy.set(newX, newY);
+        regionStats.moveRabbit(x, y, newX, newY);
+      }
       retVal = true;
     }
     return retVal;
@@ -197,12 +717,94 @@ private Object2DGrid agentSpace;
    * @return total grass found in the landscape
    */
   public int getTotalGrass(){
-    int totalgrass = 0;
-    for(int i = 0; i < agentSpace.getSizeX(); i++){
-      for(int j = 0; j < agentSpace.getSizeY(); j++){
-        totalgrass += getgrassAt(i,j);
+    return (int)grassIndex.getTotal();
+  }
+
+  /**
+   * Return the total grass found in a rectangle of the landscape.
+   * The rectangle wraps around the edges of the space.
+   * @param x X coordinate of the rectangle's lower corner
+   * @param y Y coordinate of the rectangle's lower corner
+   * @param width width of the rectangle
+   * @param height height of the rectangle
+   * @return total grass found in the rectangle
+   */
+  public int getGrassInRect(int x, int y, int width, int height){
+    return (int)grassIndex.sumWrapped(x, y, width, height);
+  }
+
+  /**
+   * Find the direction of the neighboring region holding the most grass.
+   * Each of the 4 directions rabbits move in (up, down, left and
+   * right) looks at a radius by radius block of cells lying next
+   * to X,Y on that side; ties are broken randomly.
+   * @param x X coordinate of the cell looking around
+   * @param y Y coordinate of the cell looking around
+   * @param radius how far (in cells) to look in each direction
+   * @return an index 0-7 usable with getDirectionX/getDirectionY,
+   * always one of the 4 non-diagonal directions, or -1 if none of
+   * the neighboring regions holds any grass
+   */
+  public int getRichestDirection(int x, int y, int radius){
+    int best = -1;
+    long bestGrass = 0;
+    int ties = 0;
+    for(int d = 0; d < DIRECTION_X.length; d++){
+      // Rabbits never move diagonally
+      if(DIRECTION_X[d] != 0 && DIRECTION_Y[d] != 0) continue;
+      int x0 = regionStart(x, DIRECTION_X[d], radius);
+      int y0 = regionStart(y, DIRECTION_Y[d], radius);
+      long grass = grassIndex.sumWrapped(x0, y0, radius, radius);
+      if(grass > bestGrass){
+        best = d;
+        bestGrass = grass;
+        ties = 1;
+      }
+      else if(grass == bestGrass && best != -1){
+        ties++;
+        if(Math.random() * ties < 1) best = d;
       }
     }
-    return totalgrass;
+    return best;
+  }
+
+  /**
+   * Lowest coordinate of the block lying on side 'offset' of 'pos'
+   */
+  private int regionStart(int pos, int offset, int radius){
+    if(offset < 0) return pos - radius;
+    if(offset > 0) return pos + 1;
+    return pos - radius / 2;
+  }
+
+  /**
+   * Get the X offset of a direction returned by getRichestDirection
+   * @param direction a direction index 0-7
+   * @return -1, 0 or 1
+   */
+  public static int getDirectionX(int direction){
+    return DIRECTION_X[direction];
+  }
+
+  /**
+   * Get the direction index of a pair of offsets
+   * @param dX the X offset, -1, 0 or 1
+   * @param dY the Y offset, -1, 0 or 1
+   * @return the direction index 0-7, or -1 if both offsets are 0
+   */
+  public static int getDirection(int dX, int dY){
+    for(int d = 0; d < DIRECTION_X.length; d++){
+      if(DIRECTION_X[d] == dX && DIRECTION_Y[d] == dY) return d;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the Y offset of a direction returned by getRichestDirection
+   * @param direction a direction index 0-7
+   * @return -1, 0 or 1
+   */
+  public static int getDirectionY(int direction){
+    return DIRECTION_Y[direction];
   }
 }
@@ -0,0 +1,146 @@
+// RegionStats
+package demo;
+
+/**
+ * Per-region rabbit and grass counts for a RabbitsGrassSimulationSpace.
+ *
+ * The space is cut into square tiles (the last row and column of
+ * tiles may be smaller), and a count of rabbits and of grass is kept
+ * for every tile. The space updates these counts as it changes, so
+ * reading them costs O(regions) rather than a scan of every cell.
+ */
+public class RegionStats {
+  private int regionSize;
+  private int regionsX;
+  private int regionsY;
+  private int[] rabbits;
+  private long[] grass;
+
+  /**
+   * Constructor that takes the dimensions of the space and
+   * the size of the square tiles to cut it into
+   * @param xSize size of X dimension of the space
+   * @param ySize size of Y dimension of the space
+   * @param regionSize the width and height of a region, in cells
+   * @throws IllegalArgumentException if regionSize is not positive
+   */
+  public RegionStats(int xSize, int ySize, int regionSize){
+    if(regionSize <= 0){
+      throw new IllegalArgumentException("Region size must be positive: " + regionSize);
+    }
+    this.regionSize = regionSize;
+    regionsX = (xSize + regionSize - 1) / regionSize;
+    regionsY = (ySize + regionSize - 1) / regionSize;
+    rabbits = new int[regionsX * regionsY];
+    grass = new long[regionsX * regionsY];
+  }
+
+  /**
+   * Get the index of the region holding a cell, as used by the
+   * snapshot arrays (RX * regionsY + RY)
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return the region index
+   */
+  int regionOf(int x, int y){
+    return (x / regionSize) * regionsY + (y / regionSize);
+  }
+
+  /**
+   * Record a change in the number of rabbits at a cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @param delta the number of rabbits added (negative if removed)
+   */
+  public void addRabbits(int x, int y, int delta){
+    rabbits[regionOf(x, y)] += delta;
+  }
+
+  /**
+   * Record a rabbit moving from one cell to another
+   * @param x the X coordinate of the original location
+   * @param y the Y coordinate of the original location
+   * @param newX the X coordinate of the destination location
+   * @param newY the Y coordinate of the destination location
+   */
+  public void moveRabbit(int x, int y, int newX, int newY){
+    int from = regionOf(x, y);
+    int to = regionOf(newX, newY);
+    if(from != to){
+      rabbits[from]--;
+      rabbits[to]++;
+    }
+  }
+
+  /**
+   * Record a change in the amount of grass at a cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @param delta the amount of grass added (negative if removed)
+   */
+  public void addGrass(int x, int y, int delta){
+    grass[regionOf(x, y)] += delta;
+  }
+
+  /**
+   * Get the width and height of a region, in cells
+   * @return the region size
+   */
+  public int getRegionSize(){
+    return regionSize;
+  }
+
+  /**
+   * Get the number of regions along the X dimension
+   * @return the number of region columns
+   */
+  public int getRegionsX(){
+    return regionsX;
+  }
+
+  /**
+   * Get the number of regions along the Y dimension
+   * @return the number of region rows
+   */
+  public int getRegionsY(){
+    return regionsY;
+  }
+
+  /**
+   * Get the number of rabbits in a region
+   * @param rx X index of the region
+   * @param ry Y index of the region
+   * @return the number of rabbits in the region
+   */
+  public int getRabbitsIn(int rx, int ry){
+    return rabbits[rx * regionsY + ry];
+  }
+
+  /**
+   * Get the amount of grass in a region
+   * @param rx X index of the region
+   * @param ry Y index of the region
+   * @return the amount of grass in the region
+   */
+  public long getGrassIn(int rx, int ry){
+    return grass[rx * regionsY + ry];
+  }
+
+  /**
+   * Get a copy of the rabbit counts of all regions, for charts
+   * and exporters. Region (rx, ry) is at index rx * getRegionsY() + ry.
+   * @return a new array of the rabbit counts
+   */
+  public int[] getRabbitSnapshot(){
+    return rabbits.clone();
+  }
+
+  /**
+   * Get a copy of the grass counts of all regions, for charts
+   * and exporters. Region (rx, ry) is at index rx * getRegionsY() + ry.
+   * @return a new array of the grass counts
+   */
+  public long[] getGrassSnapshot(){
+    return grass.clone();
+  }
+}
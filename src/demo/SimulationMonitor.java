@@ -0,0 +1,172 @@
+// SimulationMonitor
+package demo;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JMX MBean reporting the progress of a RabbitsGrassSimulationModel,
+ * so long-running instances can be watched with jconsole or any
+ * other JMX client without a GUI.
+ *
+ * The model calls tickCompleted once per tick; the MBean server
+ * reads the figures from its own threads, so they are kept in
+ * volatile fields.
+ */
+public class SimulationMonitor implements SimulationMonitorMBean {
+  /**
+   * Name under which the monitor is registered
+   */
+  public static final String OBJECT_NAME = "demo:type=RabbitsGrassSimulation";
+
+  private RabbitsGrassSimulationModel model;
+
+  private volatile double tick;
+  private volatile double ticksPerSecond;
+  private volatile int rabbitCount;
+  private volatile int totalGrass;
+  private volatile int birthsPerTick;
+  private volatile int deathsPerTick;
+
+  private long rateStart = System.nanoTime();
+  private int rateTicks = 0;
+
+  /**
+   * Constructor that takes the model to report on
+   * @param model the model whose parameters are reported
+   */
+  public SimulationMonitor(RabbitsGrassSimulationModel model){
+    this.model = model;
+  }
+
+  /**
+   * Register this monitor with the platform MBean server,
+   * replacing any monitor registered by an earlier run
+   */
+  public void register(){
+    try{
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if(server.isRegistered(name)){
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+    }
+    catch(JMException e){
+      System.out.println("Could not register simulation monitor: " + e);
+    }
+  }
+
+  /**
+   * Unregister this monitor from the platform MBean server, so
+   * that neither it nor its model stays reachable after a run
+   */
+  public void unregister(){
+    try{
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if(server.isRegistered(name)){
+        server.unregisterMBean(name);
+      }
+    }
+    catch(JMException e){
+      System.out.println("Could not unregister simulation monitor: " + e);
+    }
+  }
+
+  /**
+   * Record the figures for a completed tick
+   * @param newTick the tick just completed
+   * @param rabbits the number of living rabbits
+   * @param grass the total grass in the space
+   * @param births the number of rabbits born this tick
+   * @param deaths the number of rabbits that died this tick
+   */
+  public void tickCompleted(double newTick, int rabbits, int grass, int births, int deaths){
+    tick = newTick;
+    rabbitCount = rabbits;
+    totalGrass = grass;
+    birthsPerTick = births;
+    deathsPerTick = deaths;
+
+    rateTicks++;
+    long now = System.nanoTime();
+    long elapsed = now - rateStart;
+    if(elapsed >= 1000000000L){
+      ticksPerSecond = rateTicks * 1e9 / elapsed;
+      rateTicks = 0;
+      rateStart = now;
+    }
+  }
+
+  public double getTick(){
+    return tick;
+  }
+
+  public double getTicksPerSecond(){
+    return ticksPerSecond;
+  }
+
+  public int getRabbitCount(){
+    return rabbitCount;
+  }
+
+  public int getTotalGrass(){
+    return totalGrass;
+  }
+
+  public int getBirthsPerTick(){
+    return birthsPerTick;
+  }
+
+  public int getDeathsPerTick(){
+    return deathsPerTick;
+  }
+
+  public int getInitialNumber(){
+    return model.getInitialNumber();
+  }
+
+  public int getWorldXSize(){
+    return model.getWorldXSize();
+  }
+
+  public int getWorldYSize(){
+    return model.getWorldYSize();
+  }
+
+  public int getGrowthRate(){
+    return model.getGrowthRate();
+  }
+
+  public int getBirthThreshold(){
+    return model.getBirthThreshold();
+  }
+
+  public int getAgentMinLifespan(){
+    return model.getAgentMinLifespan();
+  }
+
+  public int getAgentMaxLifespan(){
+    return model.getAgentMaxLifespan();
+  }
+
+  public int getGrassSeekRadius(){
+    return model.getGrassSeekRadius();
+  }
+
+  public int getBirthRadius(){
+    return model.getBirthRadius();
+  }
+
+  public boolean getSpatialOrder(){
+    return model.getSpatialOrder();
+  }
+
+  public boolean getPublishSnapshots(){
+    return model.getPublishSnapshots();
+  }
+}
@@ -0,0 +1,94 @@
+// SimulationMonitorMBean
+package demo;
+
+/**
+ * Management interface of SimulationMonitor, exposing live
+ * telemetry of a running RabbitsGrassSimulationModel over JMX.
+ */
+public interface SimulationMonitorMBean {
+
+  /**
+   * @return the tick most recently completed
+   */
+  public double getTick();
+
+  /**
+   * @return the ticks completed per second, measured over the last second or so
+   */
+  public double getTicksPerSecond();
+
+  /**
+   * @return the number of living rabbits
+   */
+  public int getRabbitCount();
+
+  /**
+   * @return the total grass in the space
+   */
+  public int getTotalGrass();
+
+  /**
+   * @return the number of rabbits born in the last tick
+   */
+  public int getBirthsPerTick();
+
+  /**
+   * @return the number of rabbits that died in the last tick
+   */
+  public int getDeathsPerTick();
+
+  /**
+   * @return the model's InitialNumber parameter
+   */
+  public int getInitialNumber();
+
+  /**
+   * @return the model's WorldXSize parameter
+   */
+  public int getWorldXSize();
+
+  /**
+   * @return the model's WorldYSize parameter
+   */
+  public int getWorldYSize();
+
+  /**
+   * @return the model's GrowthRate parameter
+   */
+  public int getGrowthRate();
+
+  /**
+   * @return the model's BirthThreshold parameter
+   */
+  public int getBirthThreshold();
+
+  /**
+   * @return the model's AgentMinLifespan parameter
+   */
+  public int getAgentMinLifespan();
+
+  /**
+   * @return the model's AgentMaxLifespan parameter
+   */
+  public int getAgentMaxLifespan();
+
+  /**
+   * @return the model's GrassSeekRadius parameter
+   */
+  public int getGrassSeekRadius();
+
+  /**
+   * @return the model's BirthRadius parameter
+   */
+  public int getBirthRadius();
+
+  /**
+   * @return the model's SpatialOrder parameter
+   */
+  public boolean getSpatialOrder();
+
+  /**
+   * @return the model's PublishSnapshots parameter
+   */
+  public boolean getPublishSnapshots();
+}
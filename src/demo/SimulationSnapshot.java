@@ -0,0 +1,165 @@
+// SimulationSnapshot
+package demo;
+
+import java.util.List;
+
+/**
+ * Immutable view of the model's grass and agents at a tick boundary.
+ *
+ * Snapshots are published by RabbitsGrassSimulationModel and can be
+ * read by any number of analysis or export threads while the model
+ * keeps running; nothing in a snapshot changes after it is made.
+ * Grass is held as one array per statistics region of the space,
+ * and regions that did not change since the previous snapshot are
+ * shared with it rather than copied. Agents are held as primitive
+ * columns.
+ */
+public class SimulationSnapshot {
+  private final double tick;
+  private final int xSize;
+  private final int ySize;
+  private final int[][] grassTiles;
+  private final int tileSize;
+  private final long totalGrass;
+  private final int[] agentX;
+  private final int[] agentY;
+  private final int[] agentEnergy;
+  private final int[] regionRabbits;
+  private final long[] regionGrass;
+  private final int regionsY;
+
+  /**
+   * Constructor that copies the agents and region statistics and
+   * takes over the grass tiles handed out by the space
+   * @param tick the tick the snapshot was taken at
+   * @param space the space to take the snapshot of
+   * @param grassTiles the grass in each region, from the space;
+   * these must never be written to again
+   * @param agents the model's list of agents
+   */
+  SimulationSnapshot(double tick, RabbitsGrassSimulationSpace space,
+                     int[][] grassTiles, List agents){
+    this.tick = tick;
+    this.grassTiles = grassTiles;
+    xSize = space.getSizeX();
+    ySize = space.getSizeY();
+    totalGrass = space.getTotalGrass();
+
+    int n = agents.size();
+    agentX = new int[n];
+    agentY = new int[n];
+    agentEnergy = new int[n];
+    for(int i = 0; i < n; i++){
+      RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent)agents.get(i);
+      agentX[i] = cda.getX();
+      agentY[i] = cda.getY();
+      agentEnergy[i] = cda.getEnergy();
+    }
+
+    RegionStats stats = space.getRegionStats();
+    regionRabbits = stats.getRabbitSnapshot();
+    regionGrass = stats.getGrassSnapshot();
+    regionsY = stats.getRegionsY();
+    tileSize = stats.getRegionSize();
+  }
+
+  /**
+   * Get the tick this snapshot was taken at
+   * @return the tick count
+   */
+  public double getTick(){
+    return tick;
+  }
+
+  /**
+   * Get the width of the space
+   * @return the size of the X dimension
+   */
+  public int getSizeX(){
+    return xSize;
+  }
+
+  /**
+   * Get the height of the space
+   * @return the size of the Y dimension
+   */
+  public int getSizeY(){
+    return ySize;
+  }
+
+  /**
+   * Get the amount of grass that was at a cell
+   * @param x X coordinate of the cell
+   * @param y Y coordinate of the cell
+   * @return the amount of grass at X,Y
+   */
+  public int getGrassAt(int x, int y){
+    int y0 = (y / tileSize) * tileSize;
+    int tileHeight = Math.min(tileSize, ySize - y0);
+    int[] tile = grassTiles[(x / tileSize) * regionsY + y / tileSize];
+    return tile[(x % tileSize) * tileHeight + (y - y0)];
+  }
+
+  /**
+   * Get the total grass that was in the space
+   * @return the total grass
+   */
+  public long getTotalGrass(){
+    return totalGrass;
+  }
+
+  /**
+   * Get the number of agents that were alive
+   * @return the number of agents
+   */
+  public int getAgentCount(){
+    return agentX.length;
+  }
+
+  /**
+   * Get the X position of an agent
+   * @param i the agent's index in the snapshot
+   * @return the agent's X position
+   */
+  public int getAgentX(int i){
+    return agentX[i];
+  }
+
+  /**
+   * Get the Y position of an agent
+   * @param i the agent's index in the snapshot
+   * @return the agent's Y position
+   */
+  public int getAgentY(int i){
+    return agentY[i];
+  }
+
+  /**
+   * Get the energy of an agent
+   * @param i the agent's index in the snapshot
+   * @return the agent's energy
+   */
+  public int getAgentEnergy(int i){
+    return agentEnergy[i];
+  }
+
+  /**
+   * Get the number of rabbits that were in a region
+   * @param rx X index of the region
+   * @param ry Y index of the region
+   * @return the number of rabbits in the region
+   */
+  public int getRegionRabbits(int rx, int ry){
+    return regionRabbits[rx * regionsY + ry];
+  }
+
+  /**
+   * Get the amount of grass that was in a region
+   * @param rx X index of the region
+   * @param ry Y index of the region
+   * @return the amount of grass in the region
+   */
+  public long getRegionGrass(int rx, int ry){
+    return regionGrass[rx * regionsY + ry];
+  }
+}
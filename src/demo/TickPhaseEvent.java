@@ -0,0 +1,51 @@
+// TickPhaseEvent
+package demo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event covering one phase of a simulation tick
+ * (shuffle, step, reap, reproduce or spread). When no recording has
+ * the event enabled, begin and finish do nothing.
+ */
+@Name("demo.TickPhase")
+@Label("Tick Phase")
+@Category("Rabbits Grass Simulation")
+@Description("One phase of a tick of the rabbits grass model")
+public class TickPhaseEvent extends Event {
+  @Label("Phase")
+  String phase;
+
+  @Label("Tick")
+  double tick;
+
+  @Label("Agents")
+  int agents;
+
+  /**
+   * Constructor that takes the phase being timed
+   * @param phase the name of the phase
+   * @param tick the tick the phase belongs to
+   */
+  public TickPhaseEvent(String phase, double tick){
+    this.phase = phase;
+    this.tick = tick;
+  }
+
+  /**
+   * Finish the phase and record it, with the agent count. This is
+   * not an overload of Event.end, which only stops the clock.
+   * @param agentCount the number of agents at the end of the phase
+   */
+  public void finish(int agentCount){
+    end();
+    if(shouldCommit()){
+      agents = agentCount;
+      commit();
+    }
+  }
+}